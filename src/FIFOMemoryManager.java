@@ -32,15 +32,16 @@ class FIFOMemoryManager extends MemoryManager
       // number of NUM_PHYSICAL_MEMORY_FRAMES - 1
       replacedPage = _replacedPage % NUM_PHYSICAL_MEMORY_FRAMES;
 
-      // Make sure the page isn't empty
-      if (_physicalMemory[replacedPage] != null)
+      // Skip over the page being copied by a copy-on-write fault
+      if (replacedPage == _pinnedFrame)
       {
-         // Invalidate the process that is being replaced
-         _physicalMemory[replacedPage].invalidatePage(replacedPage);
+         _replacedPage++;
+         replacedPage = _replacedPage % NUM_PHYSICAL_MEMORY_FRAMES;
       }
 
-      // Put the process in the current page
-      _physicalMemory[replacedPage] = process;
+      // Invalidate every process sharing the page being replaced and put
+      // the process in the current page
+      assignFrame(replacedPage, process);
 
       // Print out the proccess ID and the page that was given to it
       System.out
@@ -19,19 +19,13 @@ class LRUMemoryManager extends MemoryManager
       // Declare constants
       int replacedPage = findVictim();
 
-      // Make sure the page isn't empty
-      if (_physicalMemory[replacedPage] != null)
-      {
-         // Invalidate the process that is being replaced
-         _physicalMemory[replacedPage].invalidatePage(replacedPage);
-      }
+      // Invalidate every process sharing the page being replaced and put
+      // the process in the current page
+      assignFrame(replacedPage, process);
 
       // Increments the counters to keep track of statistics
       _pageFaults++;
 
-      // Set the process to the victims page number
-      _physicalMemory[replacedPage] = process;
-
       // Print out the proccess ID an the page that was given to it
       System.out
             .printf("PAGE-FAULT: Process %d given page %d\n", process.getID(),
@@ -7,6 +7,8 @@
  * @version 1.5
  */
 
+import java.util.ArrayList;
+
 abstract class MemoryManager
 {
    // Class-wide constant defining how many physical pages we have
@@ -21,11 +23,30 @@ abstract class MemoryManager
    // meaning depends on the page-replacement algorithm being used
    protected int _memCounter[] = new int[NUM_PHYSICAL_MEMORY_FRAMES];
 
+   // After a fork a frame may be mapped by more than one process. The
+   // process in _physicalMemory is the frame's owner; sharers holds every
+   // process mapping the frame, so its size is the frame's reference count
+   // and every one of them can be invalidated when the frame is replaced
+   protected ArrayList<ArrayList<PCB>> _sharers =
+         new ArrayList<ArrayList<PCB>>();
+
    // Two counters to track the number of page faults and total number
    // of memory references
    protected int _pageFaults;
    protected int _memoryReferences;
 
+   // Counters for shared frames and copy-on-write faults. A COW fault is a
+   // write to a shared page; a COW copy is one that needed a new frame
+   protected int _forks;
+   protected int _sharedMappings;
+   protected int _peakFramesSaved;
+   protected int _cowFaults;
+   protected int _cowCopies;
+
+   // The frame being copied during a copy-on-write fault, which must not
+   // be chosen as the victim for its own copy. -1 when no copy is underway
+   protected int _pinnedFrame = -1;
+
    public MemoryManager()
    {
       // This is probably redundant since "null" is the default
@@ -39,11 +60,17 @@ abstract class MemoryManager
          // indicating that they are initially "free"
          _physicalMemory[i] = (PCB) null;
          _memCounter[i] = 0;
+         _sharers.add(new ArrayList<PCB>());
       }
 
       // Set our global page fault and memory-reference counters to 0
       _pageFaults = 0;
       _memoryReferences = 0;
+      _forks = 0;
+      _sharedMappings = 0;
+      _peakFramesSaved = 0;
+      _cowFaults = 0;
+      _cowCopies = 0;
 
    } // MemoryManager
 
@@ -57,24 +84,89 @@ abstract class MemoryManager
    public void freePages(PCB process)
    {
       // A process has left the system. Search the set of
-      // physical pages and if this process owned a page,
-      // set that page to "null" to indicate that it is
-      // a free page
-
-      // Set any physical page owned by this process to null and reset
-      // the counter 
+      // physical pages and if this process mapped a page,
+      // drop its reference. A page nobody else shares is
+      // set to "null" to indicate that it is a free page
       for (int i = 0; i < NUM_PHYSICAL_MEMORY_FRAMES; i++)
       {
-         if (_physicalMemory[i] == process)
+         if (_sharers.get(i).contains(process))
          {
-            _physicalMemory[i] = null;
-            _memCounter[i] = 0;
+            releaseFrame(i, process);
          }
       }
 
    } // freePages 
 
 
+   /**
+    * Records that a process forked a child so fork statistics are
+    * reported even if the parent had no pages to share.
+    */
+   public void recordFork()
+   {
+      _forks++;
+
+   } // recordFork
+
+
+   /**
+    * Adds the given process as another sharer of an occupied physical
+    * page. Used when a forked child inherits its parent's pages.
+    *
+    * @param pageNum the physical page being shared
+    * @param process the PCB that now maps the page as well
+    */
+   public void shareFrame(int pageNum, PCB process)
+   {
+      _sharers.get(pageNum).add(process);
+      _sharedMappings++;
+
+      // Every extra reference is a frame we'd otherwise have had to copy
+      _peakFramesSaved = Math.max(_peakFramesSaved, framesSaved());
+
+   } // shareFrame
+
+
+   /**
+    * Handles a write to a page the process shares copy-on-write. If the
+    * process is the last one mapping the page it simply keeps it, otherwise
+    * it drops its reference and is faulted a private copy.
+    *
+    * @param process the PCB writing to the page
+    * @param pageNum the shared physical page being written
+    * @return the number of the physical page the process should now use
+    */
+   public int handleCopyOnWrite(PCB process, int pageNum)
+   {
+      _cowFaults++;
+
+      // Nobody else maps this page any more - no need to copy it
+      if (_sharers.get(pageNum).size() == 1)
+      {
+         return pageNum;
+      }
+
+      int copyPage;
+
+      _cowCopies++;
+
+      System.out
+            .printf("COPY-ON-WRITE: Process %d copies page %d\n",
+                  process.getID(), pageNum);
+
+      // Fault in a copy while the shared page is pinned so it can't be the
+      // victim, then give up our reference to it. The copy counts as a page
+      // fault as well since it takes a frame
+      _pinnedFrame = pageNum;
+      copyPage = handlePageFault(process);
+      _pinnedFrame = -1;
+      releaseFrame(pageNum, process);
+
+      return copyPage;
+
+   } // handleCopyOnWrite
+
+
    /**
     * Finds a physical memory page to give to the requesting process.
     * We also keep track of the number of page faults.
@@ -94,6 +186,76 @@ abstract class MemoryManager
    public abstract void touchPage(int pageNum);
 
 
+   /**
+    * Takes a physical page away from every process mapping it and gives
+    * it to the requesting process as its only user.
+    *
+    * @param pageNum the physical page being replaced
+    * @param process the PCB the page is given to
+    */
+   protected void assignFrame(int pageNum, PCB process)
+   {
+      // Invalidate every process sharing the page being replaced
+      for (PCB sharer : _sharers.get(pageNum))
+      {
+         sharer.invalidatePage(pageNum);
+      }
+      _sharers.get(pageNum).clear();
+
+      // The page now belongs to the requesting process alone
+      _physicalMemory[pageNum] = process;
+      _sharers.get(pageNum).add(process);
+
+   } // assignFrame
+
+
+   /**
+    * Drops one process' reference to a physical page, freeing the page
+    * once no process maps it.
+    *
+    * @param pageNum the physical page being released
+    * @param process the PCB giving up the page
+    */
+   private void releaseFrame(int pageNum, PCB process)
+   {
+      _sharers.get(pageNum).remove(process);
+
+      if (_sharers.get(pageNum).isEmpty())
+      {
+         // Nobody maps the page, it's free
+         _physicalMemory[pageNum] = null;
+         _memCounter[pageNum] = 0;
+      }
+      else if (_physicalMemory[pageNum] == process)
+      {
+         // Hand ownership to one of the remaining sharers
+         _physicalMemory[pageNum] = _sharers.get(pageNum).get(0);
+      }
+
+   } // releaseFrame
+
+
+   /**
+    * @return the number of physical pages saved by sharing, i.e. the
+    * references beyond the first to each occupied page
+    */
+   protected int framesSaved()
+   {
+      int saved = 0;
+
+      for (int i = 0; i < NUM_PHYSICAL_MEMORY_FRAMES; i++)
+      {
+         if (_sharers.get(i).size() > 1)
+         {
+            saved += _sharers.get(i).size() - 1;
+         }
+      }
+
+      return saved;
+
+   } // framesSaved
+
+
    /**
     * Searches physical memory to find a free page or a currently
     * occupied page to replace.
@@ -102,18 +264,24 @@ abstract class MemoryManager
     */
    protected int findVictim()
    {
-      // Initially assume the victim page is page 0
-      int victimPage = 0;
+      // Initially assume the victim page is page 0, or page 1 if page 0
+      // is pinned
+      int victimPage = (_pinnedFrame == 0) ? 1 : 0;
       // If we find a free page, we'll set this flag to true and quit
       // looking any further
       boolean foundFree = false;
 
       // Search physical memory. If we find a free frame, that's
       // our victim. Otherwise our victim will be the frame with
-      // the highest _memCounter value.
+      // the highest _memCounter value. A pinned frame is never
+      // the victim.
       for (int i = 0; i < NUM_PHYSICAL_MEMORY_FRAMES && !foundFree; i++)
       {
-         if (_physicalMemory[i] == null)
+         if (i == _pinnedFrame)
+         {
+            continue;
+         }
+         else if (_physicalMemory[i] == null)
          {
             // Found a free frame - that's our victim!
             foundFree = true;
@@ -148,6 +316,13 @@ abstract class MemoryManager
          {
             System.out.println("Page " + i + " is free");
          }
+         else if (_sharers.get(i).size() > 1) // Shared copy-on-write
+         {
+            System.out.println(
+                  "Page " + i + " is owned by process # " + _physicalMemory[i]
+                        .getID() + " and shared by " + _sharers.get(i).size()
+                        + " processes");
+         }
          else // Owned by a procewss
          {
             System.out.println(
@@ -163,6 +338,20 @@ abstract class MemoryManager
                   + (int) (((float) _pageFaults / (float) _memoryReferences)
                   * 100) + "%");
 
+      // Only report sharing if some process forked, even with no pages
+      if (_forks > 0)
+      {
+         System.out.println(
+               _forks + " forks shared " + _sharedMappings
+                     + " pages, saving up to "
+                     + _peakFramesSaved + " physical pages (" + framesSaved()
+                     + " at the end of the simulation)");
+         System.out.println(
+               _cowFaults + " copy-on-write faults, " + _cowCopies
+                     + " of which copied a page (counted in the page faults"
+                     + " above)");
+      }
+
    } // printStatistics
 
 } // MemoryManager 
@@ -58,6 +58,29 @@ public class PCB
    } // handleAddress
 
 
+   /**
+    * Creates a child process that shares all of our currently valid
+    * pages. Both processes map those pages copy-on-write, so the first
+    * write by either one gets it a private copy.
+    *
+    * @param memoryManager the object that manages memory
+    * @param childID       the ID number of the new process
+    * @return the PCB of the child process
+    */
+   public PCB fork(MemoryManager memoryManager, int childID)
+   {
+      PCB child = new PCB(childID);
+
+      // Let the memoryManager count the fork for its statistics
+      memoryManager.recordFork();
+
+      // Have our page-table hand its valid mappings to the child
+      _pageTable.shareWith(child._pageTable, memoryManager);
+
+      return child;
+   } // fork
+
+
    /**
     * Tells the page-table to mark a page as invalid
     *
@@ -99,6 +122,10 @@ public class PCB
       // PageTable keeps track of whether the page is dirty or not
       private boolean _dirty[] = new boolean[Simulation.NUM_VIRTUAL_PAGES];
 
+      // PageTable keeps track of whether the page is shared copy-on-write
+      private boolean _copyOnWrite[] =
+            new boolean[Simulation.NUM_VIRTUAL_PAGES];
+
       // PageTable knows what process owns it
       private PCB _myProcess;
 
@@ -114,13 +141,14 @@ public class PCB
          // Set our reference to the owning process
          _myProcess = myProcess;
 
-         // Initially, all our pages are invalid and not dirty. We don't need to
-         // initialize the logicalMap here because we'll never access an invalid
-         // page.
+         // Initially, all our pages are invalid, not dirty and not shared. We
+         // don't need to initialize the logicalMap here because we'll never
+         // access an invalid page.
          for (int i = 0; i < Simulation.NUM_VIRTUAL_PAGES; i++)
          {
             _valid[i] = false;
             _dirty[i] = false;
+            _copyOnWrite[i] = false;
          }
       } // PageTable
 
@@ -154,13 +182,23 @@ public class PCB
             // Mark that logical page as valid and set it to refer to the
             // physical page the memoryManager just gave us
             _valid[logicalPage] = true;
+            _copyOnWrite[logicalPage] = false;
+            _logicalMap[logicalPage] = physicalPage;
+         }
+         else if (write && _copyOnWrite[logicalPage])
+         {
+            // First write to a page we share - ask the memoryManager for
+            // a page of our own
+            physicalPage =
+                  memoryManager.handleCopyOnWrite(_myProcess, physicalPage);
             _logicalMap[logicalPage] = physicalPage;
          }
 
-         // If this was a write, remember that
+         // If this was a write, remember that - the page is ours alone now
          if (write)
          {
             _dirty[logicalPage] = true;
+            _copyOnWrite[logicalPage] = false;
          }
 
          return physicalPage;
@@ -180,12 +218,14 @@ public class PCB
          boolean isDirty = false;
 
          // Find this physical page in our memory map and mark it
-         // as invalid for us
+         // as invalid for us. Stale mappings of invalid pages are skipped
+         // since a shared page may be invalidated for us more than once
          for (int i = 0; i < Simulation.NUM_VIRTUAL_PAGES; i++)
          {
-            if (_logicalMap[i] == page)
+            if (_valid[i] && _logicalMap[i] == page)
             {
                _valid[i] = false;
+               _copyOnWrite[i] = false;
                isDirty = _dirty[i];
             }
          }
@@ -195,6 +235,35 @@ public class PCB
       } // invalidatePage 
 
 
+      /**
+       * Copies our valid mappings into the child's page-table and marks
+       * them copy-on-write in both tables, telling the memoryManager that
+       * the child now shares each of those physical pages
+       *
+       * @param child         the page-table of the forked process
+       * @param memoryManager the object that manages memory
+       */
+      public void shareWith(PageTable child, MemoryManager memoryManager)
+      {
+         for (int i = 0; i < Simulation.NUM_VIRTUAL_PAGES; i++)
+         {
+            if (_valid[i])
+            {
+               child._valid[i] = true;
+               child._dirty[i] = _dirty[i];
+               child._logicalMap[i] = _logicalMap[i];
+
+               // Neither of us may write the page until it's copied
+               _copyOnWrite[i] = true;
+               child._copyOnWrite[i] = true;
+
+               memoryManager.shareFrame(_logicalMap[i], child._myProcess);
+            }
+         }
+
+      } // shareWith
+
+
       /**
        * @return string representation of pageTable that shows the logicalMap for
        * pages that are currently valid
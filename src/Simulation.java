@@ -24,6 +24,9 @@ public class Simulation
    /**
     * The main body of the simulation. Opens and reads a file of
     * memory addresses and simulates virtual memory references.
+    * Each line of the file holds a process number, a logical address and
+    * a read/write flag. An address of -1 ends the process and an address
+    * of -2 forks it, in which case the third value is the ID of the child.
     *
     * @param args array of arguments - args[0] is the name of of the
     * input file. Optional args[1] indicates the replacement algorithm to use,
@@ -33,6 +36,8 @@ public class Simulation
    {
       // An address that is used to signal the end of a process
       final int END_OF_PROCESS = -1;
+      // An address that is used to signal a process forking a child
+      final int FORK = -2;
 
       // At runtime we'll figure out what sort of MemoryManager to use -
       // we have different subclasses with different replacement mechanisms
@@ -46,7 +51,9 @@ public class Simulation
       int processID;       // ID of the current process
       PCB process;         // Process Control Block for the process
       int logicalAddress;  // Logical address of the next memory reference
+      int lastField;       // Third parameter on the line, read/write or child ID
       boolean writeFlag;   // Flag indicating whether reference is a read or write
+      PCB child;           // Process Control Block for a forked child
       Scanner inputFile;   // Scanner over the input file
 
       // Make sure we got enough arguments
@@ -81,8 +88,10 @@ public class Simulation
          // Second parameter is the logical Address
          logicalAddress = inputFile.nextInt();
          // Third parameter is the read/write flag that's represented as
-         // a 1/0 in the input file; turn it into a boolean flag
-         writeFlag = (inputFile.nextInt() == 1);
+         // a 1/0 in the input file; turn it into a boolean flag. For a
+         // fork it's the ID of the child process instead
+         lastField = inputFile.nextInt();
+         writeFlag = (lastField == 1);
 
          // See if this process already exists in the simulation
          // Note: since the HashMap uses Object keys we must
@@ -110,6 +119,25 @@ public class Simulation
             // assigned to this process
             memoryManager.freePages(process);
          }
+         else if (logicalAddress == FORK)
+         {
+            // Make sure the child isn't already in the simulation
+            if (processTable.containsKey(lastField))
+            {
+               System.err.println("ERROR: Process " + process.getID()
+                     + " cannot fork existing process " + lastField);
+            }
+            else
+            {
+               // Create the child sharing the parent's pages and add it to
+               // the processTable using its process ID as the key
+               child = process.fork(memoryManager, lastField);
+               processTable.put(child.getID(), child);
+
+               System.out.printf("FORK: Process %d forked process %d\n",
+                     process.getID(), child.getID());
+            }
+         }
          else // Valid logical address
          {
             // Tell the process to deal with this address